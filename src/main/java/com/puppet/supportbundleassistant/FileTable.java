@@ -0,0 +1,49 @@
+package com.puppet.supportbundleassistant;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shared table of indexed files. Each file path is stored once and referenced from
+ * segment metadata by an integer ID instead of repeating the full path on every segment.
+ */
+public class FileTable {
+    private final Map<String, Integer> idsByPath = new HashMap<>();
+    private final List<String> paths = new ArrayList<>();
+
+    /**
+     * Return the ID for a file, registering it if it has not been seen before.
+     */
+    public synchronized int intern(Path filePath) {
+        String path = filePath.toString();
+        Integer id = idsByPath.get(path);
+        if (id == null) {
+            id = paths.size();
+            paths.add(path);
+            idsByPath.put(path, id);
+        }
+        return id;
+    }
+
+    public synchronized String getPath(int fileId) {
+        return paths.get(fileId);
+    }
+
+    /**
+     * Pack a file ID and a segment index into a single primitive segment ID.
+     */
+    public static long segmentId(int fileId, int segmentIndex) {
+        return ((long) fileId << 32) | (segmentIndex & 0xFFFFFFFFL);
+    }
+
+    public static int fileIdOf(long segmentId) {
+        return (int) (segmentId >>> 32);
+    }
+
+    public static int segmentIndexOf(long segmentId) {
+        return (int) segmentId;
+    }
+}
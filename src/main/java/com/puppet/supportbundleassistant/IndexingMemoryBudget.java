@@ -0,0 +1,75 @@
+package com.puppet.supportbundleassistant;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Heap budget for transient indexing state. Loaded documents and pending segments reserve
+ * their estimated size against the budget, and the indexer spills to disk or splits files
+ * incrementally when a reservation does not fit.
+ */
+public class IndexingMemoryBudget {
+    private static final Logger logger = LoggerFactory.getLogger(IndexingMemoryBudget.class);
+
+    public static final String BUDGET_ENV_VAR = "INDEX_HEAP_BUDGET_MB";
+
+    // Default to half of the max heap when no budget is configured
+    private static final double DEFAULT_HEAP_FRACTION = 0.5;
+
+    private final long budgetBytes;
+    private final AtomicLong reservedBytes = new AtomicLong(0);
+
+    public IndexingMemoryBudget(long budgetBytes) {
+        if (budgetBytes <= 0) {
+            throw new IllegalArgumentException("Indexing heap budget must be positive: " + budgetBytes);
+        }
+        this.budgetBytes = budgetBytes;
+    }
+
+    /**
+     * Build a budget from the INDEX_HEAP_BUDGET_MB environment variable, falling back
+     * to a fraction of the max heap.
+     */
+    public static IndexingMemoryBudget fromEnvironment() {
+        String configured = System.getenv(BUDGET_ENV_VAR);
+        if (configured != null && !configured.isBlank()) {
+            try {
+                return new IndexingMemoryBudget(Long.parseLong(configured.trim()) * 1024 * 1024);
+            } catch (IllegalArgumentException e) {
+                logger.warn("Ignoring invalid {} value: {}", BUDGET_ENV_VAR, configured);
+            }
+        }
+        return new IndexingMemoryBudget((long) (Runtime.getRuntime().maxMemory() * DEFAULT_HEAP_FRACTION));
+    }
+
+    /**
+     * Reserve bytes against the budget. Returns false, reserving nothing, if they do not fit.
+     */
+    public boolean tryReserve(long bytes) {
+        long current;
+        do {
+            current = reservedBytes.get();
+            if (current + bytes > budgetBytes) {
+                return false;
+            }
+        } while (!reservedBytes.compareAndSet(current, current + bytes));
+        return true;
+    }
+
+    /**
+     * Return bytes previously reserved with tryReserve.
+     */
+    public void release(long bytes) {
+        reservedBytes.addAndGet(-bytes);
+    }
+
+    public long getReservedBytes() {
+        return reservedBytes.get();
+    }
+
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+}
@@ -0,0 +1,144 @@
+package com.puppet.supportbundleassistant;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Segment texts waiting to be embedded for a single file. Texts are kept in memory while
+ * they can be reserved against the indexing budget; once a reservation fails, the rest
+ * are spilled to a temporary file and read back in order.
+ */
+class PendingSegments implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(PendingSegments.class);
+
+    // Rough per-segment overhead of a String and its list slot
+    private static final long SEGMENT_OVERHEAD_BYTES = 64;
+
+    private final IndexingMemoryBudget budget;
+    private final List<String> texts = new ArrayList<>();
+    private long reservedBytes = 0;
+
+    private Path spillFile;
+    private DataOutputStream spillOutput;
+    private DataInputStream spillInput;
+    private int size = 0;
+    private int position = 0;
+
+    PendingSegments(IndexingMemoryBudget budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * Queue a segment text, spilling it to disk if it cannot be reserved against the budget.
+     * All texts must be added before the first call to nextBatch.
+     */
+    void add(String text) throws IOException {
+        if (spillOutput == null) {
+            long bytes = estimateBytes(text);
+            if (budget.tryReserve(bytes)) {
+                texts.add(text);
+                reservedBytes += bytes;
+                size++;
+                return;
+            }
+            startSpilling();
+        }
+        writeText(spillOutput, text);
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean hasNext() {
+        return position < size;
+    }
+
+    /**
+     * Index of the next segment that nextBatch will return.
+     */
+    int position() {
+        return position;
+    }
+
+    /**
+     * Return up to maxSize of the next pending texts.
+     */
+    List<String> nextBatch(int maxSize) throws IOException {
+        int end = Math.min(position + maxSize, size);
+        List<String> batch = new ArrayList<>(end - position);
+        for (int i = position; i < end; i++) {
+            if (i < texts.size()) {
+                String text = texts.set(i, null); // Release text once handed out
+                long bytes = estimateBytes(text);
+                budget.release(bytes);
+                reservedBytes -= bytes;
+                batch.add(text);
+            } else {
+                batch.add(readText(spillInput()));
+            }
+        }
+        position = end;
+        return batch;
+    }
+
+    @Override
+    public void close() throws IOException {
+        budget.release(reservedBytes);
+        reservedBytes = 0;
+        texts.clear();
+
+        if (spillFile != null) {
+            try {
+                if (spillOutput != null) {
+                    spillOutput.close();
+                }
+                if (spillInput != null) {
+                    spillInput.close();
+                }
+            } finally {
+                Files.deleteIfExists(spillFile);
+            }
+        }
+    }
+
+    private void startSpilling() throws IOException {
+        spillFile = Files.createTempFile("sba-spill-", ".tmp");
+        spillOutput = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(spillFile)));
+        logger.info("Indexing heap budget reached after {} pending segments, spilling the rest to {}",
+            size, spillFile);
+    }
+
+    private DataInputStream spillInput() throws IOException {
+        if (spillInput == null) {
+            spillOutput.close();
+            spillOutput = null;
+            spillInput = new DataInputStream(new BufferedInputStream(Files.newInputStream(spillFile)));
+        }
+        return spillInput;
+    }
+
+    private static long estimateBytes(String text) {
+        return text.length() * 2L + SEGMENT_OVERHEAD_BYTES;
+    }
+
+    static void writeText(DataOutputStream out, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readText(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
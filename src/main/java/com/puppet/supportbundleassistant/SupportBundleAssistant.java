@@ -7,6 +7,7 @@ import dev.langchain4j.model.openai.OpenAiChatModel;
 import dev.langchain4j.model.openai.OpenAiEmbeddingModel;
 import dev.langchain4j.rag.DefaultRetrievalAugmentor;
 import dev.langchain4j.rag.RetrievalAugmentor;
+import dev.langchain4j.rag.content.Content;
 import dev.langchain4j.rag.content.retriever.ContentRetriever;
 import dev.langchain4j.rag.content.retriever.EmbeddingStoreContentRetriever;
 import dev.langchain4j.service.AiServices;
@@ -20,6 +21,7 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.List;
 import java.util.Scanner;
 
 public class SupportBundleAssistant {
@@ -36,13 +38,19 @@ public class SupportBundleAssistant {
     }
 
     public SupportBundleAssistant() {
-        String openAiApiKey = System.getenv("OPENAI_API_KEY");
-        if (openAiApiKey == null || openAiApiKey.isEmpty()) {
-            throw new IllegalStateException("OPENAI_API_KEY environment variable must be set");
-        }
+        this(requireApiKey(), optionalBaseUrl(),
+            IndexingMemoryBudget.fromEnvironment(), TextFileIndexer.DEFAULT_CACHE_DIR);
+    }
 
+    /**
+     * Create an assistant against a specific OpenAI-compatible endpoint. A null base URL
+     * uses the public OpenAI API.
+     */
+    SupportBundleAssistant(String openAiApiKey, String openAiBaseUrl,
+                           IndexingMemoryBudget memoryBudget, Path cacheDir) {
         // Initialize embedding model and store
         this.embeddingModel = OpenAiEmbeddingModel.builder()
+            .baseUrl(openAiBaseUrl)
             .apiKey(openAiApiKey)
             .modelName("text-embedding-3-small")
             .build();
@@ -50,23 +58,33 @@ public class SupportBundleAssistant {
         this.embeddingStore = new InMemoryEmbeddingStore<>();
 
         // Initialize file indexer
-        this.fileIndexer = new TextFileIndexer(embeddingModel, embeddingStore);
+        this.fileIndexer = new TextFileIndexer(embeddingModel, embeddingStore, memoryBudget, cacheDir);
 
         // Initialize chat model
         ChatModel chatModel = OpenAiChatModel.builder()
+            .baseUrl(openAiBaseUrl)
             .apiKey(openAiApiKey)
             .modelName("gpt-4o-mini")
             .temperature(0.7)
             .build();
 
         // Setup content retriever
-        ContentRetriever contentRetriever = EmbeddingStoreContentRetriever.builder()
+        ContentRetriever embeddingStoreRetriever = EmbeddingStoreContentRetriever.builder()
             .embeddingStore(embeddingStore)
             .embeddingModel(embeddingModel)
             .maxResults(5)
             .minScore(0.6)
             .build();
 
+        // Log which files retrieved segments came from
+        ContentRetriever contentRetriever = query -> {
+            List<Content> contents = embeddingStoreRetriever.retrieve(query);
+            for (Content content : contents) {
+                logger.debug("Retrieved {}", fileIndexer.describeSegment(content.textSegment()));
+            }
+            return contents;
+        };
+
         // Setup RAG
         RetrievalAugmentor retrievalAugmentor = DefaultRetrievalAugmentor.builder()
             .contentRetriever(contentRetriever)
@@ -79,6 +97,23 @@ public class SupportBundleAssistant {
             .build();
     }
 
+    private static String requireApiKey() {
+        String openAiApiKey = System.getenv("OPENAI_API_KEY");
+        if (openAiApiKey == null || openAiApiKey.isEmpty()) {
+            throw new IllegalStateException("OPENAI_API_KEY environment variable must be set");
+        }
+        return openAiApiKey;
+    }
+
+    private static String optionalBaseUrl() {
+        // Unset or blank falls back to the public OpenAI API
+        String openAiBaseUrl = System.getenv("OPENAI_BASE_URL");
+        if (openAiBaseUrl == null || openAiBaseUrl.isBlank()) {
+            return null;
+        }
+        return openAiBaseUrl.trim();
+    }
+
     public static void main(String[] args) {
         try {
             SupportBundleAssistant app = new SupportBundleAssistant();
@@ -118,6 +153,15 @@ public class SupportBundleAssistant {
         System.out.println();
     }
 
+    // Package-private hooks for the offline load-test driver
+    TextFileIndexer getFileIndexer() {
+        return fileIndexer;
+    }
+
+    String chat(String message) {
+        return chatAssistant.chat(message);
+    }
+
     private void startInteractiveChat() {
         Scanner scanner = new Scanner(System.in);
 
@@ -196,6 +240,8 @@ public class SupportBundleAssistant {
         System.out.println("Index Status:");
         System.out.println("  - Total text segments: " + totalSegments);
         System.out.println("  - Text files indexed: " + fileIndexer.getIndexedFileCount());
+        System.out.println("  - Files with failed batches: " + fileIndexer.getIncompleteFileCount()
+            + " (" + fileIndexer.getFailedBatchCount() + " batches)");
         System.out.println("  - " + fileIndexer.getCacheStats());
         System.out.println();
     }
@@ -2,6 +2,7 @@ package com.puppet.supportbundleassistant;
 
 import dev.langchain4j.data.document.Document;
 import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.document.Metadata;
 import dev.langchain4j.data.document.splitter.DocumentSplitters;
 import dev.langchain4j.data.embedding.Embedding;
 import dev.langchain4j.data.segment.TextSegment;
@@ -15,10 +16,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -39,23 +42,45 @@ public class TextFileIndexer {
     private static final int DEFAULT_CHUNK_SIZE = 1000;
     private static final int LARGE_FILE_CHUNK_SIZE = 2000;
     private static final int CHUNK_OVERLAP = 200;
+    private static final int BATCH_SIZE = 20; // Reduced batch size for better performance
+    private static final int SPLIT_WINDOW_CHARS = 1024 * 1024; // Window for files too large to load whole
+
+    // Segment metadata key; the segment ID resolves to a file through the shared file table
+    public static final String SEGMENT_ID_KEY = "segment_id";
+
+    // Cache file header, bumped whenever the on-disk layout changes
+    private static final int CACHE_FORMAT_MAGIC = 0x53424132; // "SBA2"
 
     private final EmbeddingModel embeddingModel;
     private final EmbeddingStore<TextSegment> embeddingStore;
     private final AtomicInteger indexedFileCount = new AtomicInteger(0);
     private final AtomicInteger totalSegmentCount = new AtomicInteger(0);
+    private final AtomicInteger failedBatchCount = new AtomicInteger(0);
+    private final AtomicInteger incompleteFileCount = new AtomicInteger(0);
+    private final FileTable fileTable = new FileTable();
+    private final IndexingMemoryBudget memoryBudget;
+
+    public static final Path DEFAULT_CACHE_DIR = Paths.get(System.getProperty("user.home"), ".supportbundle-cache");
 
     // Cache directory and file tracking
-    private final Path cacheDir = Paths.get(System.getProperty("user.home"), ".supportbundle-cache");
+    private final Path cacheDir;
     private final Map<String, Long> fileHashes = new HashMap<>();
 
     public TextFileIndexer(EmbeddingModel embeddingModel, EmbeddingStore<TextSegment> embeddingStore) {
+        this(embeddingModel, embeddingStore, IndexingMemoryBudget.fromEnvironment(), DEFAULT_CACHE_DIR);
+    }
+
+    public TextFileIndexer(EmbeddingModel embeddingModel, EmbeddingStore<TextSegment> embeddingStore,
+                           IndexingMemoryBudget memoryBudget, Path cacheDir) {
         this.embeddingModel = embeddingModel;
         this.embeddingStore = embeddingStore;
+        this.memoryBudget = memoryBudget;
+        this.cacheDir = cacheDir;
 
         // Create cache directory and load cache index
         try {
             Files.createDirectories(cacheDir);
+            deleteStaleTempFiles();
             loadCacheIndex();
         } catch (IOException e) {
             logger.warn("Failed to create cache directory: {}", cacheDir, e);
@@ -129,74 +154,237 @@ public class TextFileIndexer {
         }
 
         try {
-            // Load document using FileSystemDocumentLoader
-            Document document = FileSystemDocumentLoader.loadDocument(filePath);
+            int fileId = fileTable.intern(filePath);
 
-            // Add file metadata
-            document.metadata().put("file_path", filePath.toString());
-            document.metadata().put("file_name", filePath.getFileName().toString());
-            document.metadata().put("file_size", String.valueOf(Files.size(filePath)));
+            // Process segments in batches, streaming them into the cache as they are embedded
+            boolean complete;
+            try (PendingSegments pending = splitFile(filePath)) {
+                complete = procesSegmentsInBatches(pending, fileId, fileKey, filePath);
+            }
 
-            // Choose appropriate chunk size based on file size
-            int chunkSize = Files.size(filePath) > LARGE_FILE_THRESHOLD
-                ? LARGE_FILE_CHUNK_SIZE
-                : DEFAULT_CHUNK_SIZE;
+            if (complete) {
+                fileHashes.put(fileKey, currentModified);
+                saveCacheIndex();
+            } else {
+                incompleteFileCount.incrementAndGet();
+            }
 
-            // Create splitter with appropriate chunk size
-            DocumentSplitter splitter = DocumentSplitters.recursive(chunkSize, CHUNK_OVERLAP);
+            indexedFileCount.incrementAndGet();
 
-            // Split document into segments
-            List<TextSegment> segments = splitter.split(document);
+        } catch (Exception e) {
+            logger.error("Failed to index text file: {}", filePath, e);
+            throw new IOException("Failed to index text file: " + filePath, e);
+        }
+    }
 
-            logger.info("Split text file {} into {} segments", filePath.getFileName(), segments.size());
+    /**
+     * Split a file into a pending segment queue. Files that fit within the indexing heap
+     * budget are loaded whole; larger files are read and split a window at a time so the
+     * whole document is never on the heap.
+     */
+    private PendingSegments splitFile(Path filePath) throws IOException {
+        long fileSize = Files.size(filePath);
 
-            // Process segments in batches to avoid memory issues
-            procesSegmentsInBatches(segments, filePath.toString());
+        // Choose appropriate chunk size based on file size
+        int chunkSize = fileSize > LARGE_FILE_THRESHOLD
+            ? LARGE_FILE_CHUNK_SIZE
+            : DEFAULT_CHUNK_SIZE;
 
-            // Cache the results
-            saveToCache(fileKey, segments, filePath);
-            fileHashes.put(fileKey, currentModified);
-            saveCacheIndex();
+        // Create splitter with appropriate chunk size
+        DocumentSplitter splitter = DocumentSplitters.recursive(chunkSize, CHUNK_OVERLAP);
 
-            indexedFileCount.incrementAndGet();
+        PendingSegments pending = new PendingSegments(memoryBudget);
+        try {
+            long documentBytes = fileSize * 2;
+            if (memoryBudget.tryReserve(documentBytes)) {
+                List<TextSegment> segments;
+                try {
+                    // Document metadata is copied onto every split segment, so leave it empty
+                    Document document = FileSystemDocumentLoader.loadDocument(filePath);
+                    segments = splitter.split(document);
+                } finally {
+                    // The document is garbage once split; its segments reserve their own share below
+                    memoryBudget.release(documentBytes);
+                }
+                addSegments(pending, segments);
+            } else {
+                logger.info("Text file {} exceeds the indexing heap budget, splitting incrementally",
+                    filePath.getFileName());
+                splitIncrementally(filePath, splitter, pending);
+            }
+        } catch (IOException | RuntimeException e) {
+            pending.close();
+            throw e;
+        }
 
-        } catch (Exception e) {
-            logger.error("Failed to index text file: {}", filePath, e);
-            throw new IOException("Failed to index text file: " + filePath, e);
+        logger.info("Split text file {} into {} segments", filePath.getFileName(), pending.size());
+        return pending;
+    }
+
+    /**
+     * Split a file a window at a time, queueing each window's segments as they are produced.
+     * Windows end at the last line break before SPLIT_WINDOW_CHARS, or at the limit itself
+     * for lines longer than a window, so no window ever exceeds it.
+     */
+    private void splitIncrementally(Path filePath, DocumentSplitter splitter, PendingSegments pending)
+            throws IOException {
+        try (Reader reader = new InputStreamReader(Files.newInputStream(filePath), StandardCharsets.UTF_8)) {
+            char[] window = new char[SPLIT_WINDOW_CHARS];
+            int filled = 0;
+            int read;
+            while ((read = reader.read(window, filled, window.length - filled)) != -1) {
+                filled += read;
+                if (filled < window.length) {
+                    continue;
+                }
+
+                int cut = windowEnd(window, filled);
+                splitWindow(new String(window, 0, cut), splitter, pending);
+                System.arraycopy(window, cut, window, 0, filled - cut);
+                filled -= cut;
+            }
+            splitWindow(new String(window, 0, filled), splitter, pending);
         }
     }
 
-    private void procesSegmentsInBatches(List<TextSegment> segments, String filePath) {
-        final int BATCH_SIZE = 20; // Reduced batch size for better performance
+    /**
+     * Length of the window to split off: through the last line break, or the whole window
+     * if it has none, without separating a surrogate pair.
+     */
+    private static int windowEnd(char[] window, int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (window[i] == '\n') {
+                return i + 1;
+            }
+        }
+        return Character.isHighSurrogate(window[length - 1]) ? length - 1 : length;
+    }
 
-        for (int i = 0; i < segments.size(); i += BATCH_SIZE) {
-            int endIndex = Math.min(i + BATCH_SIZE, segments.size());
-            List<TextSegment> batch = segments.subList(i, endIndex);
+    private static void splitWindow(String text, DocumentSplitter splitter, PendingSegments pending)
+            throws IOException {
+        if (!text.isBlank()) {
+            addSegments(pending, splitter.split(Document.from(text)));
+        }
+    }
+
+    private static void addSegments(PendingSegments pending, List<TextSegment> segments) throws IOException {
+        for (TextSegment segment : segments) {
+            pending.add(segment.text());
+        }
+    }
+
+    /**
+     * Embed pending segments in batches, adding them to the store and streaming them
+     * into the file's cache. Returns false if any batch failed to embed, in which case no
+     * cache file is kept for the file. Cache write failures are logged and only stop caching.
+     */
+    private boolean procesSegmentsInBatches(PendingSegments pending, int fileId, String fileKey, Path filePath)
+            throws IOException {
+        Path cacheFile = cacheDir.resolve(fileKey + ".cache");
+        Path tempCacheFile = cacheDir.resolve(fileKey + ".cache.tmp");
+        boolean complete = true;
+        boolean cached = false;
+
+        DataOutputStream cacheOut = null;
+        try {
+            cacheOut = openCacheWriter(tempCacheFile, filePath);
+        } catch (IOException e) {
+            logger.warn("Failed to save cache for {}: {}", filePath.getFileName(), e.getMessage());
+        }
+
+        try {
+            while (pending.hasNext()) {
+                int startIndex = pending.position();
+                List<String> texts = pending.nextBatch(BATCH_SIZE);
+                int endIndex = startIndex + texts.size();
+
+                List<TextSegment> batch = new ArrayList<>(texts.size());
+                for (int j = 0; j < texts.size(); j++) {
+                    batch.add(createSegment(texts.get(j), fileId, startIndex + j));
+                }
 
-            try {
                 // Generate embeddings for batch
-                Response<List<Embedding>> response = embeddingModel.embedAll(batch);
-                List<Embedding> embeddings = response.content();
+                List<Embedding> embeddings;
+                try {
+                    Response<List<Embedding>> response = embeddingModel.embedAll(batch);
+                    embeddings = response.content();
+                } catch (Exception e) {
+                    logger.error("Failed to process batch {}-{} for file {}", startIndex, endIndex - 1, filePath, e);
+                    failedBatchCount.incrementAndGet();
+                    complete = false;
+                    continue;
+                }
 
                 // Store embeddings with segments
                 for (int j = 0; j < batch.size(); j++) {
-                    TextSegment segment = batch.get(j);
-                    Embedding embedding = embeddings.get(j);
-
-                    // Add segment metadata
-                    segment.metadata().put("file_path", filePath);
-                    segment.metadata().put("segment_index", String.valueOf(i + j));
-
-                    embeddingStore.add(embedding, segment);
+                    embeddingStore.add(embeddings.get(j), batch.get(j));
                     totalSegmentCount.incrementAndGet();
                 }
 
-                logger.debug("Processed batch {}-{} for file {}", i, endIndex - 1, filePath);
+                // A file with a failed batch is not cached, so stop writing once one fails
+                if (complete && cacheOut != null) {
+                    try {
+                        for (int j = 0; j < batch.size(); j++) {
+                            writeCachedSegment(cacheOut, startIndex + j, batch.get(j).text(), embeddings.get(j).vector());
+                        }
+                    } catch (IOException e) {
+                        logger.warn("Failed to save cache for {}: {}", filePath.getFileName(), e.getMessage());
+                        cacheOut = closeQuietly(cacheOut);
+                    }
+                }
+
+                logger.debug("Processed batch {}-{} for file {}", startIndex, endIndex - 1, filePath);
+            }
+
+            if (complete && cacheOut != null) {
+                try {
+                    cacheOut.writeInt(-1); // End of segments marker
+                    cacheOut.close();
+                    cacheOut = null;
+                    Files.move(tempCacheFile, cacheFile, StandardCopyOption.REPLACE_EXISTING);
+                    cached = true;
+                    logger.debug("Saved {} segments to cache for {}", pending.position(), filePath.getFileName());
+                } catch (IOException e) {
+                    logger.warn("Failed to save cache for {}: {}", filePath.getFileName(), e.getMessage());
+                }
+            }
+        } finally {
+            closeQuietly(cacheOut);
+            deleteQuietly(tempCacheFile);
+            if (!cached) {
+                // Don't leave an older cache behind for the new contents
+                deleteQuietly(cacheFile);
+            }
+        }
+        return complete;
+    }
 
-            } catch (Exception e) {
-                logger.error("Failed to process batch {}-{} for file {}", i, endIndex - 1, filePath, e);
+    private static DataOutputStream closeQuietly(DataOutputStream out) {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                logger.debug("Failed to close cache file", e);
             }
         }
+        return null;
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.warn("Failed to delete cache file: {}", file, e);
+        }
+    }
+
+    /**
+     * Create a segment whose metadata references the shared file table by ID.
+     */
+    private static TextSegment createSegment(String text, int fileId, int segmentIndex) {
+        Metadata metadata = new Metadata();
+        metadata.put(SEGMENT_ID_KEY, FileTable.segmentId(fileId, segmentIndex));
+        return TextSegment.from(text, metadata);
     }
 
     /**
@@ -245,6 +433,32 @@ public class TextFileIndexer {
         return totalSegmentCount.get();
     }
 
+    /**
+     * Number of segment batches that failed to embed and were left out of the index.
+     */
+    public int getFailedBatchCount() {
+        return failedBatchCount.get();
+    }
+
+    /**
+     * Number of indexed files with at least one failed batch.
+     */
+    public int getIncompleteFileCount() {
+        return incompleteFileCount.get();
+    }
+
+    /**
+     * Describe a segment by the file and position its segment ID resolves to.
+     */
+    public String describeSegment(TextSegment segment) {
+        Long segmentId = segment.metadata().getLong(SEGMENT_ID_KEY);
+        if (segmentId == null) {
+            return "segment without ID";
+        }
+        return fileTable.getPath(FileTable.fileIdOf(segmentId))
+            + " (segment " + FileTable.segmentIndexOf(segmentId) + ")";
+    }
+
     /**
      * Generate a unique key for a file based on its path and name
      */
@@ -264,6 +478,22 @@ public class TextFileIndexer {
         }
     }
 
+    /**
+     * Remove partial cache files left behind by an interrupted run
+     */
+    private void deleteStaleTempFiles() throws IOException {
+        try (DirectoryStream<Path> staleFiles = Files.newDirectoryStream(cacheDir, "*.tmp")) {
+            for (Path staleFile : staleFiles) {
+                try {
+                    Files.delete(staleFile);
+                    logger.debug("Deleted stale cache file: {}", staleFile.getFileName());
+                } catch (IOException e) {
+                    logger.warn("Failed to delete stale cache file: {}", staleFile, e);
+                }
+            }
+        }
+    }
+
     /**
      * Load cache index from disk
      */
@@ -312,25 +542,36 @@ public class TextFileIndexer {
             return false;
         }
 
-        try (ObjectInputStream ois = new ObjectInputStream(Files.newInputStream(cacheFile))) {
-            @SuppressWarnings("unchecked")
-            List<CachedSegment> cachedSegments = (List<CachedSegment>) ois.readObject();
-
-            // Restore segments to embedding store
-            for (CachedSegment cached : cachedSegments) {
-                TextSegment segment = TextSegment.from(cached.text);
-                // Add metadata entries
-                for (Map.Entry<String, String> entry : cached.metadata.entrySet()) {
-                    segment.metadata().put(entry.getKey(), entry.getValue());
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(cacheFile)))) {
+            if (in.readInt() != CACHE_FORMAT_MAGIC) {
+                throw new IOException("Unsupported cache format");
+            }
+            in.readUTF(); // Cached file path, informational only
+
+            // Read the whole file before touching the store so a corrupt cache adds nothing
+            int fileId = fileTable.intern(filePath);
+            List<Embedding> embeddings = new ArrayList<>();
+            List<TextSegment> segments = new ArrayList<>();
+            int segmentIndex;
+            while ((segmentIndex = in.readInt()) >= 0) {
+                String text = PendingSegments.readText(in);
+                float[] vector = new float[in.readInt()];
+                for (int i = 0; i < vector.length; i++) {
+                    vector[i] = in.readFloat();
                 }
 
-                Embedding embedding = new Embedding(cached.vector);
-                embeddingStore.add(embedding, segment);
+                embeddings.add(new Embedding(vector));
+                segments.add(createSegment(text, fileId, segmentIndex));
+            }
+
+            // Restore segments to embedding store
+            for (int i = 0; i < segments.size(); i++) {
+                embeddingStore.add(embeddings.get(i), segments.get(i));
                 totalSegmentCount.incrementAndGet();
             }
 
             return true;
-        } catch (IOException | ClassNotFoundException e) {
+        } catch (IOException e) {
             logger.warn("Failed to load cache for {}: {}", filePath.getFileName(), e.getMessage());
             // Delete corrupted cache file
             try {
@@ -343,42 +584,25 @@ public class TextFileIndexer {
     }
 
     /**
-     * Save embeddings to cache
+     * Open a cache file for streaming segments into and write its header
      */
-    private void saveToCache(String fileKey, List<TextSegment> segments, Path filePath) {
-        Path cacheFile = cacheDir.resolve(fileKey + ".cache");
-
-        try {
-            // Generate embeddings and prepare cache data
-            List<CachedSegment> cachedSegments = new java.util.ArrayList<>();
-            Response<List<Embedding>> response = embeddingModel.embedAll(segments);
-            List<Embedding> embeddings = response.content();
-
-            for (int i = 0; i < segments.size(); i++) {
-                TextSegment segment = segments.get(i);
-                Embedding embedding = embeddings.get(i);
-
-                CachedSegment cached = new CachedSegment();
-                cached.text = segment.text();
-
-                // Store basic metadata we know we'll need
-                cached.metadata = new HashMap<>();
-                cached.metadata.put("file_path", filePath.toString());
-                cached.metadata.put("file_name", filePath.getFileName().toString());
-                cached.metadata.put("segment_index", String.valueOf(i));
-
-                cached.vector = embedding.vector();
-                cachedSegments.add(cached);
-            }
-
-            // Save to cache file
-            try (ObjectOutputStream oos = new ObjectOutputStream(Files.newOutputStream(cacheFile))) {
-                oos.writeObject(cachedSegments);
-            }
+    private DataOutputStream openCacheWriter(Path cacheFile, Path filePath) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(cacheFile)));
+        out.writeInt(CACHE_FORMAT_MAGIC);
+        out.writeUTF(filePath.toString());
+        return out;
+    }
 
-            logger.debug("Saved {} segments to cache for {}", cachedSegments.size(), filePath.getFileName());
-        } catch (IOException e) {
-            logger.warn("Failed to save cache for {}: {}", filePath.getFileName(), e.getMessage());
+    /**
+     * Append a single embedded segment to a cache file
+     */
+    private static void writeCachedSegment(DataOutputStream out, int segmentIndex, String text, float[] vector)
+            throws IOException {
+        out.writeInt(segmentIndex);
+        PendingSegments.writeText(out, text);
+        out.writeInt(vector.length);
+        for (float value : vector) {
+            out.writeFloat(value);
         }
     }
 
@@ -437,14 +661,4 @@ public class TextFileIndexer {
 
         return String.format("Cache: %d files, %.2f MB", fileCount, cacheSize / (1024.0 * 1024.0));
     }
-
-    /**
-     * Serializable class for caching segment data
-     */
-    private static class CachedSegment implements Serializable {
-        private static final long serialVersionUID = 1L;
-        String text;
-        Map<String, String> metadata;
-        float[] vector;
-    }
-}
\ No newline at end of file
+}
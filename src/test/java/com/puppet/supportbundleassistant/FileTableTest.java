@@ -0,0 +1,42 @@
+package com.puppet.supportbundleassistant;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class FileTableTest {
+
+    @Test
+    void segmentIdRoundTripsFileIdAndIndex() {
+        int[][] cases = {{0, 0}, {1, 2}, {42, 123456}, {Integer.MAX_VALUE, Integer.MAX_VALUE}, {7, 0}, {0, 7}};
+        for (int[] c : cases) {
+            long segmentId = FileTable.segmentId(c[0], c[1]);
+            assertEquals(c[0], FileTable.fileIdOf(segmentId));
+            assertEquals(c[1], FileTable.segmentIndexOf(segmentId));
+        }
+    }
+
+    @Test
+    void segmentIdsAreDistinctAcrossFilesAndIndexes() {
+        assertNotEquals(FileTable.segmentId(1, 0), FileTable.segmentId(0, 1));
+        assertNotEquals(FileTable.segmentId(1, 2), FileTable.segmentId(2, 1));
+    }
+
+    @Test
+    void internReturnsStableIdsAndResolvesPaths() {
+        FileTable fileTable = new FileTable();
+        Path first = Path.of("logs", "backend", "first.log");
+        Path second = Path.of("logs", "ui", "second.log");
+
+        int firstId = fileTable.intern(first);
+        int secondId = fileTable.intern(second);
+
+        assertNotEquals(firstId, secondId);
+        assertEquals(firstId, fileTable.intern(Path.of("logs", "backend", "first.log")));
+        assertEquals(first.toString(), fileTable.getPath(firstId));
+        assertEquals(second.toString(), fileTable.getPath(secondId));
+    }
+}
@@ -0,0 +1,273 @@
+package com.puppet.supportbundleassistant;
+
+import org.apache.commons.io.FilenameUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Offline load test. Starts a local stub OpenAI server, indexes a bundle against it and
+ * then runs concurrent chat queries, reporting throughput and p50/p99 latencies.
+ *
+ * mvn -Pload-test test-compile exec:java -Dexec.args="--queries=500"
+ */
+public class LoadTestDriver {
+    private static final Logger logger = LoggerFactory.getLogger(LoadTestDriver.class);
+
+    private static final long QUERY_TIMEOUT_MINUTES = 60;
+
+    // Question sampling from the indexed bundle
+    private static final long QUESTION_SEED = 42;
+    private static final long MAX_SCANNED_LINES = 100_000;
+    private static final int MAX_QUESTION_LINE_CHARS = 300;
+    private static final List<String> QUESTION_SOURCE_EXTENSIONS = List.of("txt", "json", "log");
+
+    public static void main(String[] args) {
+        try {
+            new LoadTestDriver().run(LoadTestOptions.parse(args));
+        } catch (Exception e) {
+            logger.error("Load test failed", e);
+            System.exit(1);
+        }
+    }
+
+    public void run(LoadTestOptions options) throws IOException, InterruptedException {
+        Path cacheDir = Files.createTempDirectory("sba-loadtest-cache");
+        Path syntheticBundle = null;
+
+        try (StubOpenAiServer server = new StubOpenAiServer(options.port, options.latencyMillis,
+                options.rateLimitRate, options.errorRate)) {
+            Path bundle = options.bundle;
+            if (bundle == null) {
+                syntheticBundle = Files.createTempDirectory("sba-loadtest-bundle");
+                generateSyntheticBundle(syntheticBundle, options.syntheticFiles, options.syntheticFileKb);
+                bundle = syntheticBundle;
+            }
+
+            // Each run uses a fresh cache directory so every file is embedded through the server
+            SupportBundleAssistant assistant = new SupportBundleAssistant("load-test", server.getBaseUrl(),
+                IndexingMemoryBudget.fromEnvironment(), cacheDir);
+
+            System.out.println("=== Load Test ===");
+            System.out.printf("Stub server: %s (latency %dms, 429 rate %.2f, error rate %.2f)%n",
+                server.getBaseUrl(), options.latencyMillis, options.rateLimitRate, options.errorRate);
+            System.out.println();
+
+            runIndexingWorkload(assistant.getFileIndexer(), server, bundle);
+            List<String> questions = sampleQuestions(bundle, options.queries);
+            runQueryWorkload(assistant, server, questions, options.concurrency);
+
+            System.out.println("Stub server requests:");
+            System.out.println("  - Embeddings: " + server.getEmbeddingRequests());
+            System.out.println("  - Chat completions: " + server.getChatRequests());
+            System.out.println("  - Rate limited (429): " + server.getRateLimitedResponses());
+            System.out.println("  - Errors (500): " + server.getErrorResponses());
+        } finally {
+            deleteRecursively(cacheDir);
+            if (syntheticBundle != null) {
+                deleteRecursively(syntheticBundle);
+            }
+        }
+    }
+
+    private void runIndexingWorkload(TextFileIndexer indexer, StubOpenAiServer server, Path bundle)
+            throws IOException {
+        System.out.println("Indexing " + bundle);
+
+        server.drainEmbeddingLatencies();
+        long startTime = System.nanoTime();
+        int fileCount = indexer.indexDirectory(bundle);
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+
+        // indexDirectory counts files whose batches partly failed, so only complete files count as successes
+        int incompleteFiles = indexer.getIncompleteFileCount();
+        int completeFiles = fileCount - incompleteFiles;
+
+        System.out.println("Indexing results:");
+        System.out.printf("  - Files: %d succeeded, %d with failed batches (%d batches) in %.2f seconds%n",
+            completeFiles, incompleteFiles, indexer.getFailedBatchCount(), seconds);
+        System.out.printf("  - Throughput: %.2f files/s, %.2f segments/s%n",
+            completeFiles / seconds, indexer.getTotalSegmentCount() / seconds);
+        printLatencies("Embeddings request latency", server.drainEmbeddingLatencies());
+        System.out.println();
+    }
+
+    private void runQueryWorkload(SupportBundleAssistant assistant, StubOpenAiServer server, List<String> questions,
+                                  int concurrency) throws InterruptedException {
+        System.out.printf("Running %d queries with concurrency %d%n", questions.size(), concurrency);
+
+        List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger failures = new AtomicInteger(0);
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        server.drainChatLatencies();
+        int chatRequestsWithContentBefore = server.getChatRequestsWithContent();
+        long startTime = System.nanoTime();
+
+        for (String question : questions) {
+            executor.submit(() -> {
+                long queryStart = System.nanoTime();
+                try {
+                    assistant.chat(question);
+                    latencies.add(System.nanoTime() - queryStart);
+                } catch (Exception e) {
+                    failures.incrementAndGet();
+                    logger.debug("Query failed", e);
+                }
+            });
+        }
+
+        executor.shutdown();
+        boolean finished = executor.awaitTermination(QUERY_TIMEOUT_MINUTES, TimeUnit.MINUTES);
+        if (!finished) {
+            executor.shutdownNow();
+        }
+
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        if (finished) {
+            System.out.println("Query results:");
+        } else {
+            System.out.printf("Query results (INCOMPLETE: timed out after %d minutes, %d queries unfinished):%n",
+                QUERY_TIMEOUT_MINUTES, questions.size() - latencies.size() - failures.get());
+        }
+        System.out.printf("  - Queries: %d succeeded, %d failed in %.2f seconds%n",
+            latencies.size(), failures.get(), seconds);
+        System.out.printf("  - Throughput: %.2f queries/s%n", latencies.size() / seconds);
+        System.out.printf("  - Queries with retrieved content: %d%n",
+            server.getChatRequestsWithContent() - chatRequestsWithContentBefore);
+        printLatencies("Query latency", latencies);
+        printLatencies("Chat completions request latency", server.drainChatLatencies());
+        System.out.println();
+    }
+
+    /**
+     * Build questions from lines of the bundle, sampled with a fixed seed, so queries share
+     * vocabulary with indexed segments and exercise retrieval like real questions would.
+     */
+    private static List<String> sampleQuestions(Path bundle, int count) throws IOException {
+        Random random = new Random(QUESTION_SEED);
+        List<String> sampled = new ArrayList<>();
+        long seen = 0;
+
+        List<Path> files;
+        try (Stream<Path> paths = Files.walk(bundle)) {
+            files = paths.filter(Files::isRegularFile)
+                .filter(path -> QUESTION_SOURCE_EXTENSIONS.contains(FilenameUtils.getExtension(path.toString())))
+                .sorted()
+                .toList();
+        }
+
+        for (Path file : files) {
+            try (Stream<String> lines = Files.lines(file)) {
+                for (String line : (Iterable<String>) lines.filter(l -> !l.isBlank())::iterator) {
+                    if (seen >= MAX_SCANNED_LINES) {
+                        break;
+                    }
+                    // Reservoir sampling keeps an even spread across everything scanned
+                    String question = "What does this log entry indicate? "
+                        + line.substring(0, Math.min(line.length(), MAX_QUESTION_LINE_CHARS));
+                    if (sampled.size() < count) {
+                        sampled.add(question);
+                    } else {
+                        long slot = (long) (random.nextDouble() * (seen + 1));
+                        if (slot < count) {
+                            sampled.set((int) slot, question);
+                        }
+                    }
+                    seen++;
+                }
+            } catch (UncheckedIOException e) {
+                logger.debug("Skipping unreadable file for questions: {}", file, e);
+            }
+        }
+
+        if (sampled.isEmpty()) {
+            sampled.add("Why did the puppetserver service fail to start?");
+        }
+
+        // Repeat the sample if the bundle had fewer lines than queries requested
+        List<String> questions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            questions.add(sampled.get(i % sampled.size()));
+        }
+        return questions;
+    }
+
+    private static void printLatencies(String label, List<Long> latenciesNanos) {
+        if (latenciesNanos.isEmpty()) {
+            System.out.println("  - " + label + ": no successful samples");
+            return;
+        }
+
+        long[] sorted;
+        synchronized (latenciesNanos) {
+            sorted = latenciesNanos.stream().mapToLong(Long::longValue).toArray();
+        }
+        Arrays.sort(sorted);
+        System.out.printf("  - %s: p50 %.1fms, p99 %.1fms, max %.1fms%n", label,
+            percentile(sorted, 50) / 1e6, percentile(sorted, 99) / 1e6, sorted[sorted.length - 1] / 1e6);
+    }
+
+    /**
+     * Nearest-rank percentile of an ascending array.
+     */
+    private static long percentile(long[] sorted, double percentile) {
+        int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+        return sorted[Math.max(0, Math.min(rank, sorted.length) - 1)];
+    }
+
+    /**
+     * Write log files with varied, repeatable content so runs are comparable.
+     */
+    private static void generateSyntheticBundle(Path directory, int fileCount, int fileKb) throws IOException {
+        String[] levels = {"INFO", "WARN", "ERROR", "DEBUG"};
+        String[] services = {"puppetserver", "puppetdb", "pe-console-services", "pe-orchestration-services"};
+
+        for (int f = 0; f < fileCount; f++) {
+            Path file = directory.resolve(services[f % services.length]).resolve("log-" + f + ".log");
+            Files.createDirectories(file.getParent());
+
+            long targetBytes = fileKb * 1024L;
+            long written = 0;
+            int line = 0;
+            try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+                while (written < targetBytes) {
+                    String text = String.format("2025-01-01T00:%02d:%02d.%03dZ %s [%s] request %d handled for node-%d.example.com%n",
+                        (line / 60) % 60, line % 60, line % 1000, levels[line % levels.length],
+                        services[f % services.length], line, (line * 31 + f) % 500);
+                    writer.write(text);
+                    written += text.length();
+                    line++;
+                }
+            }
+        }
+    }
+
+    private static void deleteRecursively(Path directory) {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.delete(path);
+                } catch (IOException e) {
+                    logger.warn("Failed to delete load test file: {}", path, e);
+                }
+            });
+        } catch (IOException e) {
+            logger.warn("Failed to clean up load test directory: {}", directory, e);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.puppet.supportbundleassistant;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Command line options shared by the load-test driver and the standalone stub server.
+ * Options are given as --name=value.
+ */
+class LoadTestOptions {
+    // Stub server behaviour
+    int port = 0;
+    long latencyMillis = 50;
+    double rateLimitRate = 0.0;
+    double errorRate = 0.0;
+
+    // Indexing workload; a synthetic bundle is generated when no bundle is given
+    Path bundle = null;
+    int syntheticFiles = 50;
+    int syntheticFileKb = 64;
+
+    // Query workload
+    int queries = 200;
+    int concurrency = 8;
+
+    static LoadTestOptions parse(String[] args) {
+        LoadTestOptions options = new LoadTestOptions();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("Expected --name=value but got: " + arg);
+            }
+            String name = arg.substring(2, separator);
+            String value = arg.substring(separator + 1);
+
+            switch (name) {
+                case "port" -> options.port = Integer.parseInt(value);
+                case "latency-ms" -> options.latencyMillis = Long.parseLong(value);
+                case "rate-limit-rate" -> options.rateLimitRate = Double.parseDouble(value);
+                case "error-rate" -> options.errorRate = Double.parseDouble(value);
+                case "bundle" -> options.bundle = Paths.get(value);
+                case "files" -> options.syntheticFiles = Integer.parseInt(value);
+                case "file-kb" -> options.syntheticFileKb = Integer.parseInt(value);
+                case "queries" -> options.queries = Integer.parseInt(value);
+                case "concurrency" -> options.concurrency = Integer.parseInt(value);
+                default -> throw new IllegalArgumentException("Unknown option: --" + name);
+            }
+        }
+        return options;
+    }
+}
@@ -0,0 +1,79 @@
+package com.puppet.supportbundleassistant;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class PendingSegmentsTest {
+
+    private static final int BATCH_SIZE = 3;
+
+    @Test
+    void inMemoryAndSpilledQueuesReturnTheSameBatches() throws IOException {
+        List<String> texts = sampleTexts(10);
+
+        IndexingMemoryBudget unlimited = new IndexingMemoryBudget(Long.MAX_VALUE / 2);
+        IndexingMemoryBudget tiny = new IndexingMemoryBudget(1);
+
+        assertEquals(drain(texts, unlimited), drain(texts, tiny));
+    }
+
+    @Test
+    void partiallySpilledQueueKeepsOrder() throws IOException {
+        List<String> texts = sampleTexts(10);
+
+        // Room for roughly the first few texts only
+        IndexingMemoryBudget partial = new IndexingMemoryBudget(600);
+
+        List<List<String>> batches = drain(texts, partial);
+        List<String> flattened = new ArrayList<>();
+        batches.forEach(flattened::addAll);
+        assertEquals(texts, flattened);
+    }
+
+    @Test
+    void reservationsAreReleasedOnceDrainedOrClosed() throws IOException {
+        IndexingMemoryBudget budget = new IndexingMemoryBudget(1024 * 1024);
+
+        drain(sampleTexts(10), budget);
+        assertEquals(0, budget.getReservedBytes());
+
+        // Closing without draining must also hand reservations back
+        try (PendingSegments pending = new PendingSegments(budget)) {
+            for (String text : sampleTexts(10)) {
+                pending.add(text);
+            }
+            pending.nextBatch(BATCH_SIZE);
+        }
+        assertEquals(0, budget.getReservedBytes());
+    }
+
+    private static List<List<String>> drain(List<String> texts, IndexingMemoryBudget budget) throws IOException {
+        List<List<String>> batches = new ArrayList<>();
+        try (PendingSegments pending = new PendingSegments(budget)) {
+            for (String text : texts) {
+                pending.add(text);
+            }
+            assertEquals(texts.size(), pending.size());
+
+            while (pending.hasNext()) {
+                batches.add(pending.nextBatch(BATCH_SIZE));
+            }
+            assertFalse(pending.hasNext());
+        }
+        return batches;
+    }
+
+    private static List<String> sampleTexts(int count) {
+        List<String> texts = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            texts.add("segment " + i + " with non-ASCII text é中 " + "x".repeat(i * 10));
+        }
+        return texts;
+    }
+}
@@ -0,0 +1,307 @@
+package com.puppet.supportbundleassistant;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * Local stand-in for the OpenAI embeddings and chat completions API, used for offline
+ * load testing. Embeddings are deterministic per input text and chat completions are
+ * canned. Latency, rate-limit (429) responses and server errors can be injected.
+ */
+public class StubOpenAiServer implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(StubOpenAiServer.class);
+
+    // Matches text-embedding-3-small
+    public static final int EMBEDDING_DIMENSIONS = 1536;
+
+    private static final Pattern TOKEN_SEPARATOR = Pattern.compile("[^\\p{Alnum}]+");
+    private static final int DIMENSIONS_PER_TOKEN = 16;
+
+    // DefaultContentInjector's prompt marker, present only when retrieval found content
+    private static final String RETRIEVED_CONTENT_MARKER = "Answer using the following information:";
+
+    static final String CANNED_COMPLETION =
+        "This is a canned response from the local stand-in server.";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final long latencyMillis;
+    private final double rateLimitRate;
+    private final double errorRate;
+
+    private final AtomicInteger embeddingRequests = new AtomicInteger(0);
+    private final AtomicInteger chatRequests = new AtomicInteger(0);
+    private final AtomicInteger chatRequestsWithContent = new AtomicInteger(0);
+    private final AtomicInteger rateLimitedResponses = new AtomicInteger(0);
+    private final AtomicInteger errorResponses = new AtomicInteger(0);
+
+    // Server-side handling time of successful requests, in nanoseconds
+    private final Queue<Long> embeddingLatencies = new ConcurrentLinkedQueue<>();
+    private final Queue<Long> chatLatencies = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Start a server on the loopback interface. Port 0 picks a free port.
+     *
+     * @param latencyMillis delay added before every response
+     * @param rateLimitRate fraction of requests answered with 429
+     * @param errorRate fraction of requests answered with 500
+     */
+    public StubOpenAiServer(int port, long latencyMillis, double rateLimitRate, double errorRate) throws IOException {
+        this.latencyMillis = latencyMillis;
+        this.rateLimitRate = rateLimitRate;
+        this.errorRate = errorRate;
+
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+
+        logger.info("Stub OpenAI server listening on {}", getBaseUrl());
+    }
+
+    /**
+     * Base URL to configure OpenAI clients with.
+     */
+    public String getBaseUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/v1";
+    }
+
+    public int getEmbeddingRequests() {
+        return embeddingRequests.get();
+    }
+
+    public int getChatRequests() {
+        return chatRequests.get();
+    }
+
+    /**
+     * Chat requests whose prompt carried retrieved content.
+     */
+    public int getChatRequestsWithContent() {
+        return chatRequestsWithContent.get();
+    }
+
+    public int getRateLimitedResponses() {
+        return rateLimitedResponses.get();
+    }
+
+    public int getErrorResponses() {
+        return errorResponses.get();
+    }
+
+    /**
+     * Return and clear the latencies of successful embeddings requests so far.
+     */
+    public List<Long> drainEmbeddingLatencies() {
+        return drain(embeddingLatencies);
+    }
+
+    /**
+     * Return and clear the latencies of successful chat completions requests so far.
+     */
+    public List<Long> drainChatLatencies() {
+        return drain(chatLatencies);
+    }
+
+    private static List<Long> drain(Queue<Long> latencies) {
+        List<Long> drained = new ArrayList<>();
+        Long latency;
+        while ((latency = latencies.poll()) != null) {
+            drained.add(latency);
+        }
+        return drained;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        long startTime = System.nanoTime();
+        try (exchange) {
+            String path = exchange.getRequestURI().getPath();
+            if (!"POST".equals(exchange.getRequestMethod())
+                    || !(path.endsWith("/embeddings") || path.endsWith("/chat/completions"))) {
+                sendError(exchange, 404, "invalid_request_error", "Unknown endpoint: " + path);
+                return;
+            }
+
+            JsonNode request;
+            try (InputStream body = exchange.getRequestBody()) {
+                request = objectMapper.readTree(body);
+            }
+
+            if (latencyMillis > 0) {
+                Thread.sleep(latencyMillis);
+            }
+
+            double roll = ThreadLocalRandom.current().nextDouble();
+            if (roll < rateLimitRate) {
+                rateLimitedResponses.incrementAndGet();
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                sendError(exchange, 429, "rate_limit_exceeded", "Rate limit reached (injected)");
+                return;
+            }
+            if (roll < rateLimitRate + errorRate) {
+                errorResponses.incrementAndGet();
+                sendError(exchange, 500, "server_error", "Internal server error (injected)");
+                return;
+            }
+
+            if (path.endsWith("/embeddings")) {
+                embeddingRequests.incrementAndGet();
+                sendJson(exchange, 200, embeddingsResponse(request));
+                embeddingLatencies.add(System.nanoTime() - startTime);
+            } else {
+                chatRequests.incrementAndGet();
+                if (request.path("messages").toString().contains(RETRIEVED_CONTENT_MARKER)) {
+                    chatRequestsWithContent.incrementAndGet();
+                }
+                sendJson(exchange, 200, chatResponse(request));
+                chatLatencies.add(System.nanoTime() - startTime);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            logger.warn("Stub server failed to handle request", e);
+        }
+    }
+
+    private ObjectNode embeddingsResponse(JsonNode request) {
+        JsonNode input = request.path("input");
+        int dimensions = request.path("dimensions").asInt(EMBEDDING_DIMENSIONS);
+
+        ObjectNode response = objectMapper.createObjectNode();
+        response.put("object", "list");
+        response.put("model", request.path("model").asText("text-embedding-3-small"));
+        ArrayNode data = response.putArray("data");
+
+        int tokens = 0;
+        int count = input.isArray() ? input.size() : 1;
+        for (int i = 0; i < count; i++) {
+            String text = input.isArray() ? input.get(i).asText() : input.asText();
+            tokens += text.length() / 4;
+
+            ObjectNode item = data.addObject();
+            item.put("object", "embedding");
+            item.put("index", i);
+            ArrayNode vector = item.putArray("embedding");
+            for (float value : deterministicVector(text, dimensions)) {
+                vector.add(value);
+            }
+        }
+
+        ObjectNode usage = response.putObject("usage");
+        usage.put("prompt_tokens", tokens);
+        usage.put("total_tokens", tokens);
+        return response;
+    }
+
+    private ObjectNode chatResponse(JsonNode request) {
+        ObjectNode response = objectMapper.createObjectNode();
+        response.put("id", "chatcmpl-stub-" + chatRequests.get());
+        response.put("object", "chat.completion");
+        response.put("created", System.currentTimeMillis() / 1000);
+        response.put("model", request.path("model").asText("gpt-4o-mini"));
+
+        ObjectNode choice = response.putArray("choices").addObject();
+        choice.put("index", 0);
+        ObjectNode message = choice.putObject("message");
+        message.put("role", "assistant");
+        message.put("content", CANNED_COMPLETION);
+        choice.put("finish_reason", "stop");
+
+        ObjectNode usage = response.putObject("usage");
+        usage.put("prompt_tokens", request.path("messages").toString().length() / 4);
+        usage.put("completion_tokens", CANNED_COMPLETION.length() / 4);
+        usage.put("total_tokens", usage.get("prompt_tokens").asInt() + usage.get("completion_tokens").asInt());
+        return response;
+    }
+
+    /**
+     * Unit-length vector built by hashing each word of the text onto a few signed dimensions.
+     * The same input always embeds the same way, and texts sharing words get a positive
+     * cosine similarity, so retrieval behaves like it would with a real embedding model.
+     */
+    static float[] deterministicVector(String text, int dimensions) {
+        float[] vector = new float[dimensions];
+        boolean hasTokens = false;
+        for (String token : TOKEN_SEPARATOR.split(text.toLowerCase())) {
+            if (token.isEmpty()) {
+                continue;
+            }
+            hasTokens = true;
+            Random random = new Random(token.hashCode());
+            for (int i = 0; i < DIMENSIONS_PER_TOKEN; i++) {
+                vector[random.nextInt(dimensions)] += random.nextBoolean() ? 1 : -1;
+            }
+        }
+        if (!hasTokens) {
+            vector[Math.floorMod(text.hashCode(), dimensions)] = 1;
+        }
+
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        float scale = norm == 0 ? 0 : (float) (1.0 / Math.sqrt(norm));
+        for (int i = 0; i < dimensions; i++) {
+            vector[i] *= scale;
+        }
+        return vector;
+    }
+
+    private void sendError(HttpExchange exchange, int status, String type, String message) throws IOException {
+        ObjectNode response = objectMapper.createObjectNode();
+        ObjectNode error = response.putObject("error");
+        error.put("message", message);
+        error.put("type", type);
+        error.put("code", type);
+        sendJson(exchange, status, response);
+    }
+
+    private void sendJson(HttpExchange exchange, int status, JsonNode body) throws IOException {
+        byte[] bytes = objectMapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadTestOptions options = LoadTestOptions.parse(args);
+        StubOpenAiServer server = new StubOpenAiServer(options.port, options.latencyMillis,
+            options.rateLimitRate, options.errorRate);
+        System.out.println("Stub OpenAI server running at " + server.getBaseUrl());
+        System.out.println("Set OPENAI_BASE_URL to this value to point the assistant at it. Ctrl-C to stop.");
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+    }
+}
@@ -0,0 +1,83 @@
+package com.puppet.supportbundleassistant;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.openai.OpenAiChatModel;
+import dev.langchain4j.model.openai.OpenAiEmbeddingModel;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StubOpenAiServerTest {
+
+    @Test
+    void embeddingsAreDeterministicAndSimilarityPreserving() throws IOException {
+        try (StubOpenAiServer server = new StubOpenAiServer(0, 0, 0.0, 0.0)) {
+            EmbeddingModel model = embeddingModel(server);
+
+            Embedding first = model.embed("puppetserver failed to start on node-1").content();
+            Embedding second = model.embed("puppetserver failed to start on node-1").content();
+            Embedding related = model.embed("why did puppetserver fail to start").content();
+            Embedding unrelated = model.embed("console ui rendered the dashboard").content();
+
+            assertEquals(StubOpenAiServer.EMBEDDING_DIMENSIONS, first.dimension());
+            assertArrayEquals(first.vector(), second.vector());
+            assertTrue(cosine(first, related) > cosine(first, unrelated));
+            assertEquals(4, server.getEmbeddingRequests());
+        }
+    }
+
+    @Test
+    void chatReturnsCannedCompletion() throws IOException {
+        try (StubOpenAiServer server = new StubOpenAiServer(0, 0, 0.0, 0.0)) {
+            ChatModel model = OpenAiChatModel.builder()
+                .baseUrl(server.getBaseUrl())
+                .apiKey("test")
+                .modelName("gpt-4o-mini")
+                .build();
+
+            assertEquals(StubOpenAiServer.CANNED_COMPLETION, model.chat("What failed?"));
+            assertEquals(1, server.getChatRequests());
+        }
+    }
+
+    @Test
+    void rateLimitedRequestsSurfaceAsClientErrors() throws IOException {
+        try (StubOpenAiServer server = new StubOpenAiServer(0, 0, 1.0, 0.0)) {
+            EmbeddingModel model = OpenAiEmbeddingModel.builder()
+                .baseUrl(server.getBaseUrl())
+                .apiKey("test")
+                .modelName("text-embedding-3-small")
+                .maxRetries(0)
+                .build();
+
+            assertThrows(RuntimeException.class, () -> model.embed("rate limited"));
+            assertEquals(1, server.getRateLimitedResponses());
+            assertEquals(0, server.getEmbeddingRequests());
+        }
+    }
+
+    private static EmbeddingModel embeddingModel(StubOpenAiServer server) {
+        return OpenAiEmbeddingModel.builder()
+            .baseUrl(server.getBaseUrl())
+            .apiKey("test")
+            .modelName("text-embedding-3-small")
+            .build();
+    }
+
+    private static double cosine(Embedding a, Embedding b) {
+        float[] x = a.vector();
+        float[] y = b.vector();
+        double dot = 0;
+        for (int i = 0; i < x.length; i++) {
+            dot += x[i] * y[i];
+        }
+        return dot; // Stub vectors are unit length
+    }
+}
@@ -0,0 +1,198 @@
+package com.puppet.supportbundleassistant;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TextFileIndexerCacheTest {
+
+    private static final int DIMENSIONS = 8;
+
+    @TempDir
+    Path cacheDir;
+
+    @TempDir
+    Path bundleDir;
+
+    private Path logFile;
+
+    @BeforeEach
+    void writeLogFile() throws IOException {
+        logFile = bundleDir.resolve("backend.log");
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            content.append("2025-01-01T00:00:").append(i % 60).append(" INFO request ").append(i)
+                .append(" handled for node-").append(i % 7).append(".example.com\n");
+        }
+        Files.writeString(logFile, content);
+    }
+
+    @Test
+    void cachedSegmentsAreRestoredWithoutReembedding() throws IOException {
+        CountingEmbeddingModel firstModel = new CountingEmbeddingModel();
+        InMemoryEmbeddingStore<TextSegment> firstStore = new InMemoryEmbeddingStore<>();
+        newIndexer(firstModel, firstStore).indexTextFile(logFile);
+
+        int segmentCount = firstModel.embeddedSegments;
+        assertTrue(segmentCount > 1, "expected the file to split into several segments");
+
+        CountingEmbeddingModel secondModel = new CountingEmbeddingModel();
+        InMemoryEmbeddingStore<TextSegment> secondStore = new InMemoryEmbeddingStore<>();
+        TextFileIndexer secondIndexer = newIndexer(secondModel, secondStore);
+        secondIndexer.indexTextFile(logFile);
+
+        assertEquals(0, secondModel.embeddedSegments);
+        assertEquals(segmentCount, secondIndexer.getTotalSegmentCount());
+        assertEquals(segmentIds(firstStore), segmentIds(secondStore));
+    }
+
+    @Test
+    void truncatedCacheAddsNothingBeforeReembedding() throws IOException {
+        CountingEmbeddingModel firstModel = new CountingEmbeddingModel();
+        newIndexer(firstModel, new InMemoryEmbeddingStore<>()).indexTextFile(logFile);
+        int segmentCount = firstModel.embeddedSegments;
+
+        Path cacheFile = singleCacheFile();
+        try (FileChannel channel = FileChannel.open(cacheFile, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() / 2);
+        }
+
+        CountingEmbeddingModel secondModel = new CountingEmbeddingModel();
+        InMemoryEmbeddingStore<TextSegment> secondStore = new InMemoryEmbeddingStore<>();
+        TextFileIndexer secondIndexer = newIndexer(secondModel, secondStore);
+        secondIndexer.indexTextFile(logFile);
+
+        // The file is re-embedded once and the partial cache contributes no duplicates
+        assertEquals(segmentCount, secondModel.embeddedSegments);
+        assertEquals(segmentCount, segmentIds(secondStore).size());
+        assertEquals(segmentCount, countEntries(secondStore));
+        assertEquals(segmentCount, secondIndexer.getTotalSegmentCount());
+    }
+
+    @Test
+    void unwritableCacheStillIndexesSegments() throws IOException {
+        // A cache directory nested under a regular file can never be created or written
+        Path blocker = Files.writeString(bundleDir.resolve("not-a-directory"), "");
+        CountingEmbeddingModel model = new CountingEmbeddingModel();
+        InMemoryEmbeddingStore<TextSegment> store = new InMemoryEmbeddingStore<>();
+        TextFileIndexer indexer = new TextFileIndexer(model, store,
+            new IndexingMemoryBudget(64L * 1024 * 1024), blocker.resolve("cache"));
+
+        indexer.indexTextFile(logFile);
+
+        assertTrue(model.embeddedSegments > 1);
+        assertEquals(model.embeddedSegments, countEntries(store));
+        assertEquals(0, indexer.getFailedBatchCount());
+    }
+
+    @Test
+    void incrementalPathMatchesWholeFilePath() throws IOException {
+        CountingEmbeddingModel wholeModel = new CountingEmbeddingModel();
+        InMemoryEmbeddingStore<TextSegment> wholeStore = new InMemoryEmbeddingStore<>();
+        newIndexer(wholeModel, wholeStore).indexTextFile(logFile);
+
+        // A budget smaller than the file forces incremental splitting and spilling
+        IndexingMemoryBudget smallBudget = new IndexingMemoryBudget(1024);
+        assertTrue(Files.size(logFile) * 2 > smallBudget.getBudgetBytes());
+
+        Path otherCacheDir = Files.createDirectory(cacheDir.resolve("small-budget"));
+        CountingEmbeddingModel smallModel = new CountingEmbeddingModel();
+        InMemoryEmbeddingStore<TextSegment> smallStore = new InMemoryEmbeddingStore<>();
+        new TextFileIndexer(smallModel, smallStore, smallBudget, otherCacheDir).indexTextFile(logFile);
+
+        // The file is smaller than one split window, so both paths produce the same segments
+        assertEquals(wholeModel.embeddedSegments, smallModel.embeddedSegments);
+        assertEquals(textsBySegmentId(wholeStore), textsBySegmentId(smallStore));
+        assertEquals(0, smallBudget.getReservedBytes());
+    }
+
+    private TextFileIndexer newIndexer(EmbeddingModel model, InMemoryEmbeddingStore<TextSegment> store) {
+        return new TextFileIndexer(model, store, new IndexingMemoryBudget(64L * 1024 * 1024), cacheDir);
+    }
+
+    private Path singleCacheFile() throws IOException {
+        List<Path> cacheFiles = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(cacheDir, "*.cache")) {
+            files.forEach(cacheFiles::add);
+        }
+        assertEquals(1, cacheFiles.size());
+        return cacheFiles.get(0);
+    }
+
+    private static List<EmbeddingMatch<TextSegment>> allMatches(InMemoryEmbeddingStore<TextSegment> store) {
+        EmbeddingSearchRequest request = EmbeddingSearchRequest.builder()
+            .queryEmbedding(Embedding.from(vectorFor("query")))
+            .maxResults(1000)
+            .minScore(0.0)
+            .build();
+        return store.search(request).matches();
+    }
+
+    private static int countEntries(InMemoryEmbeddingStore<TextSegment> store) {
+        return allMatches(store).size();
+    }
+
+    private static Set<Long> segmentIds(InMemoryEmbeddingStore<TextSegment> store) {
+        Set<Long> ids = new TreeSet<>();
+        for (EmbeddingMatch<TextSegment> match : allMatches(store)) {
+            ids.add(match.embedded().metadata().getLong(TextFileIndexer.SEGMENT_ID_KEY));
+        }
+        return ids;
+    }
+
+    private static Map<Long, String> textsBySegmentId(InMemoryEmbeddingStore<TextSegment> store) {
+        Map<Long, String> texts = new TreeMap<>();
+        for (EmbeddingMatch<TextSegment> match : allMatches(store)) {
+            TextSegment segment = match.embedded();
+            texts.put(segment.metadata().getLong(TextFileIndexer.SEGMENT_ID_KEY), segment.text());
+        }
+        return texts;
+    }
+
+    private static float[] vectorFor(String text) {
+        Random random = new Random(text.hashCode());
+        float[] vector = new float[DIMENSIONS];
+        for (int i = 0; i < DIMENSIONS; i++) {
+            vector[i] = random.nextFloat() + 0.01f;
+        }
+        return vector;
+    }
+
+    private static class CountingEmbeddingModel implements EmbeddingModel {
+        int embeddedSegments = 0;
+
+        @Override
+        public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+            embeddedSegments += segments.size();
+            List<Embedding> embeddings = new ArrayList<>();
+            for (TextSegment segment : segments) {
+                embeddings.add(Embedding.from(vectorFor(segment.text())));
+            }
+            return Response.from(embeddings);
+        }
+    }
+}